@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2012-2014 Spotify AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.spotify.elasticsearch.plugins.indexwindow;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A single retention action taken by an {@link IndexWindowRunner}, as written
+ * to the audit index.
+ */
+@ToString
+@EqualsAndHashCode
+public class AuditEvent {
+
+    public enum Action {
+        DELETE, SKIP, CLOSE
+    }
+
+    public enum Result {
+        SUCCESS, NOT_ACKNOWLEDGED, FAILURE
+    }
+
+    @Getter
+    private final String node;
+
+    @Getter
+    private final String window;
+
+    @Getter
+    private final String index;
+
+    @Getter
+    private final Action action;
+
+    @Getter
+    private final long timestamp;
+
+    @Getter
+    private final long latency;
+
+    @Getter
+    private final Result result;
+
+    @Getter
+    private final String message;
+
+    /**
+     * @param node
+     *            The name of the node that took the action
+     * @param window
+     *            The index prefix of the window that took the action
+     * @param index
+     *            The index the action was taken on, or null if the action
+     *            concerns the whole window
+     * @param action
+     *            What was done
+     * @param timestamp
+     *            When the action started, in milliseconds since the epoch
+     * @param latency
+     *            How long the action took, in milliseconds
+     * @param result
+     *            The outcome of the action
+     * @param message
+     *            Optional details, e.g., the failure reason
+     */
+    public AuditEvent(String node, String window, String index,
+            Action action, long timestamp, long latency, Result result,
+            String message) {
+        super();
+        this.node = node;
+        this.window = window;
+        this.index = index;
+        this.action = action;
+        this.timestamp = timestamp;
+        this.latency = latency;
+        this.result = result;
+        this.message = message;
+    }
+}
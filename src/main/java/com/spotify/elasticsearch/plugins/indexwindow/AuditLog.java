@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2012-2014 Spotify AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.spotify.elasticsearch.plugins.indexwindow;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Buffers {@link AuditEvent}s in memory and writes them to the audit indices
+ * with bulk requests, either when enough events have piled up or when the
+ * flush interval has passed, whichever comes first.
+ *
+ * Recording an event never blocks: the buffer is bounded, and events that do
+ * not fit are dropped and counted. While bulk requests are failing, flushes
+ * are backed off so that a struggling cluster is not hammered by the audit
+ * trail on top of the retention work itself.
+ *
+ * Events go to one index per day, named {@value #AUDIT_INDEX_PREFIX} followed
+ * by the date in {@value #AUDIT_DATE_FORMAT}, so that the audit trail can be
+ * kept in check by an index window of its own.
+ */
+public class AuditLog extends AbstractLifecycleComponent<AuditLog> {
+
+    public static final String AUDIT_INDEX_PREFIX = "index-window-audit_";
+    public static final String AUDIT_DATE_FORMAT = "yyyy.MM.dd";
+
+    private static final String SETTING_CAPACITY = "index_window.audit.capacity";
+    private static final String SETTING_BULK_SIZE = "index_window.audit.bulk_size";
+    private static final String SETTING_FLUSH_INTERVAL = "index_window.audit.flush_interval";
+    private static final String SETTING_REQUEST_TIMEOUT = "index_window.audit.request_timeout";
+
+    private static final int DEFAULT_CAPACITY = 10000;
+    private static final int DEFAULT_BULK_SIZE = 500;
+    private static final TimeValue DEFAULT_FLUSH_INTERVAL = new TimeValue(10,
+            TimeUnit.SECONDS);
+    private static final TimeValue DEFAULT_REQUEST_TIMEOUT = new TimeValue(10,
+            TimeUnit.SECONDS);
+
+    private static final String AUDIT_TEMPLATE = "index-window-audit";
+    private static final String AUDIT_TYPE = "event";
+
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(5);
+
+    private final Client client;
+
+    private final int bulkSize;
+
+    private final long flushInterval;
+
+    private final long requestTimeout;
+
+    private final String nodeName;
+
+    private final BlockingQueue<AuditEvent> buffer;
+
+    private final ScheduledExecutorService executor;
+
+    private final AtomicBoolean flushPending = new AtomicBoolean(false);
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final ObjectMapper mapper;
+
+    private final SimpleDateFormat dateFormat;
+
+    private volatile boolean templateReady;
+
+    private volatile long backoff;
+
+    private volatile long nextAttempt;
+
+    /**
+     * @param settings
+     *            The node settings. The buffer capacity, the number of events
+     *            that triggers a flush, the maximum time between flushes and
+     *            how long a single request to the cluster may take can be set
+     *            with {@value #SETTING_CAPACITY}, {@value #SETTING_BULK_SIZE},
+     *            {@value #SETTING_FLUSH_INTERVAL} and
+     *            {@value #SETTING_REQUEST_TIMEOUT}. The node name is written
+     *            into every event.
+     * @param client
+     *            The elasticsearch client through which the audit indices are
+     *            written
+     */
+    @Inject
+    public AuditLog(Settings settings, Client client) {
+        super(settings);
+        this.client = client;
+        bulkSize = settings.getAsInt(SETTING_BULK_SIZE, DEFAULT_BULK_SIZE);
+        flushInterval = settings.getAsTime(SETTING_FLUSH_INTERVAL,
+                DEFAULT_FLUSH_INTERVAL).millis();
+        requestTimeout = settings.getAsTime(SETTING_REQUEST_TIMEOUT,
+                DEFAULT_REQUEST_TIMEOUT).millis();
+        nodeName = settings.get("name", "");
+        buffer = new ArrayBlockingQueue<AuditEvent>(settings.getAsInt(
+                SETTING_CAPACITY, DEFAULT_CAPACITY));
+        mapper = new ObjectMapper();
+        dateFormat = new SimpleDateFormat(AUDIT_DATE_FORMAT);
+        executor = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread thread = new Thread(r,
+                                "index-window-audit");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    @Override
+    protected void doStart() {
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                safeFlush();
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Flushes what is left in the buffer, ignoring any back off, and stops the
+     * flushing thread.
+     */
+    @Override
+    protected void doStop() {
+        try {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    nextAttempt = 0;
+                    safeFlush();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // Already shut down, nothing left to flush.
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(2 * requestTimeout,
+                    TimeUnit.MILLISECONDS)) {
+                logger.warn("Audit log did not finish its final flush in time, "
+                        + buffer.size() + " events lost");
+            }
+        } catch (final InterruptedException e) {
+            logger.error("Audit log executor termination got interrupted.", e);
+        }
+    }
+
+    @Override
+    protected void doClose() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Adds an event to the buffer without blocking. If the buffer is full, the
+     * event is dropped.
+     */
+    public void record(AuditEvent event) {
+        if (!buffer.offer(event)) {
+            final long count = dropped.incrementAndGet();
+            if (count == 1 || count % 1000 == 0) {
+                logger.warn("Audit buffer is full, dropped " + count
+                        + " events so far");
+            }
+            return;
+        }
+        if (buffer.size() >= bulkSize
+                && flushPending.compareAndSet(false, true)) {
+            try {
+                executor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        flushPending.set(false);
+                        safeFlush();
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                // The audit log is stopped; the event will be lost with the
+                // rest of the buffer.
+                flushPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * @return The number of events that never made it to the audit indices,
+     *         either because the buffer was full or because writing them
+     *         failed
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The name of the node this audit log is running on
+     */
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    long getNextAttempt() {
+        return nextAttempt;
+    }
+
+    /**
+     * Flushes on the flushing thread. Anything thrown is logged and swallowed,
+     * since it would otherwise cancel the periodic flush for good.
+     */
+    private void safeFlush() {
+        try {
+            flush();
+        } catch (final Throwable t) {
+            logger.error("Unexpected failure while flushing the audit log", t);
+        }
+    }
+
+    /**
+     * Writes the buffered events to the audit indices. Flushes must not run
+     * concurrently, which the single flushing thread takes care of; the back
+     * off state is volatile so that it can be read from other threads.
+     */
+    void flush() {
+        if (System.currentTimeMillis() < nextAttempt) {
+            return;
+        }
+        if (!templateReady) {
+            templateReady = putTemplate();
+            if (!templateReady) {
+                backOff();
+                return;
+            }
+        }
+        while (!buffer.isEmpty()) {
+            final List<AuditEvent> events = new ArrayList<AuditEvent>(bulkSize);
+            buffer.drainTo(events, bulkSize);
+            if (!writeToElasticsearch(events)) {
+                backOff();
+                return;
+            }
+            backoff = 0;
+        }
+    }
+
+    private void backOff() {
+        backoff = backoff == 0 ? flushInterval : Math.min(backoff * 2,
+                MAX_BACKOFF);
+        nextAttempt = System.currentTimeMillis() + backoff;
+        logger.warn("Backing off audit log flushes for " + backoff + " ms");
+    }
+
+    /**
+     * Makes sure that the audit indices get a mapping where the timestamp is a
+     * date and the identifying fields are not analyzed, before the first of
+     * them is created by a bulk request.
+     *
+     * @return true if the template is in place
+     */
+    boolean putTemplate() {
+        try {
+            final XContentBuilder mapping = jsonBuilder().startObject()
+                    .startObject(AUDIT_TYPE).startObject("properties")
+                    .startObject("node").field("type", "string")
+                    .field("index", "not_analyzed").endObject()
+                    .startObject("window").field("type", "string")
+                    .field("index", "not_analyzed").endObject()
+                    .startObject("index").field("type", "string")
+                    .field("index", "not_analyzed").endObject()
+                    .startObject("action").field("type", "string")
+                    .field("index", "not_analyzed").endObject()
+                    .startObject("result").field("type", "string")
+                    .field("index", "not_analyzed").endObject()
+                    .startObject("timestamp").field("type", "date")
+                    .endObject()
+                    .startObject("latency").field("type", "long").endObject()
+                    .startObject("message").field("type", "string")
+                    .endObject()
+                    .endObject().endObject().endObject();
+            client.admin().indices().preparePutTemplate(AUDIT_TEMPLATE)
+                    .setTemplate(AUDIT_INDEX_PREFIX + "*")
+                    .addMapping(AUDIT_TYPE, mapping).execute()
+                    .actionGet(requestTimeout);
+            return true;
+        } catch (final Exception e) {
+            logger.warn("Could not put the audit index template", e);
+            return false;
+        }
+    }
+
+    /**
+     * @return false if the cluster did not take any of the events, i.e., the
+     *         request failed altogether or every single item was rejected
+     */
+    boolean writeToElasticsearch(List<AuditEvent> events) {
+        final BulkRequestBuilder bulk = client.prepareBulk();
+        for (final AuditEvent event : events) {
+            try {
+                bulk.add(client.prepareIndex(auditIndex(event), AUDIT_TYPE)
+                        .setSource(mapper.writeValueAsString(event)));
+            } catch (final JsonProcessingException e) {
+                dropped.incrementAndGet();
+                logger.error("Could not serialize audit event " + event, e);
+            }
+        }
+        if (bulk.numberOfActions() == 0) {
+            return true;
+        }
+        final BulkResponse response;
+        try {
+            response = bulk.execute().actionGet(requestTimeout);
+        } catch (final Exception e) {
+            dropped.addAndGet(bulk.numberOfActions());
+            logger.warn("Bulk request to audit index failed, dropped "
+                    + bulk.numberOfActions() + " events", e);
+            return false;
+        }
+        if (!response.hasFailures()) {
+            return true;
+        }
+        int failed = 0;
+        for (final BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                failed++;
+            }
+        }
+        dropped.addAndGet(failed);
+        logger.warn(failed + " of " + bulk.numberOfActions()
+                + " audit events were not written: "
+                + response.buildFailureMessage());
+        return failed < bulk.numberOfActions();
+    }
+
+    private String auditIndex(AuditEvent event) {
+        return AUDIT_INDEX_PREFIX
+                + dateFormat.format(new Date(event.getTimestamp()));
+    }
+}
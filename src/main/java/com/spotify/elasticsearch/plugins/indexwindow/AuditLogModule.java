@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2012-2014 Spotify AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.spotify.elasticsearch.plugins.indexwindow;
+
+import org.elasticsearch.common.inject.AbstractModule;
+
+/**
+ * Binds the node-wide {@link AuditLog} that is shared by the REST action and
+ * all of the index window runners.
+ */
+public class AuditLogModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+        bind(AuditLog.class).asEagerSingleton();
+    }
+}
@@ -70,10 +70,13 @@ public class IndexWindowAction extends BaseRestHandler {
 
     private final ObjectMapper mapper;
 
+    private final AuditLog auditLog;
+
     @Inject
     public IndexWindowAction(Settings settings, Client client,
-            RestController controller) {
+            RestController controller, AuditLog auditLog) {
         super(settings, client);
+        this.auditLog = auditLog;
         controller.registerHandler(PUT, "/" + META_INDEX, this);
         controller.registerHandler(POST, "/" + META_INDEX, this);
         controller.registerHandler(DELETE, "/" + META_INDEX + "/{"
@@ -253,7 +256,7 @@ public class IndexWindowAction extends BaseRestHandler {
                 final IndexWindow window = mapper.readValue(json,
                         IndexWindow.class);
                 activeWindows.put(window.getIndexPrefix(),
-                        new IndexWindowRunner(client, window));
+                        new IndexWindowRunner(client, window, auditLog));
             } catch (final JsonParseException e) {
                 // TODO Auto-generated catch block
                 e.printStackTrace();
@@ -283,7 +286,7 @@ public class IndexWindowAction extends BaseRestHandler {
         removeWindow(indexWindow.getIndexPrefix());
         writeToElasticsearch(indexWindow);
         activeWindows.put(indexWindow.getIndexPrefix(), new IndexWindowRunner(
-                client, indexWindow));
+                client, indexWindow, auditLog));
 
     }
 
@@ -16,6 +16,10 @@
 
 package com.spotify.elasticsearch.plugins.indexwindow;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.elasticsearch.common.component.LifecycleComponent;
 import org.elasticsearch.common.inject.Module;
 import org.elasticsearch.plugins.AbstractPlugin;
 import org.elasticsearch.rest.RestModule;
@@ -32,6 +36,20 @@ public class IndexWindowPlugin extends AbstractPlugin {
         return "Helps defining a fixed time-based window of indices. It assumes that time is encoded as postfix in name of the index. It continuesly removes the indices that are out of the time window.";
     }
 
+    @Override
+    public Collection<Class<? extends Module>> modules() {
+        final Collection<Class<? extends Module>> modules = new ArrayList<Class<? extends Module>>();
+        modules.add(AuditLogModule.class);
+        return modules;
+    }
+
+    @Override
+    public Collection<Class<? extends LifecycleComponent>> services() {
+        final Collection<Class<? extends LifecycleComponent>> services = new ArrayList<Class<? extends LifecycleComponent>>();
+        services.add(AuditLog.class);
+        return services;
+    }
+
     @Override
     public void processModule(Module module) {
         if (module instanceof RestModule)
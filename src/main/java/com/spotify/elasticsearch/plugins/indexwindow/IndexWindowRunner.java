@@ -36,6 +36,9 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 
+import com.spotify.elasticsearch.plugins.indexwindow.AuditEvent.Action;
+import com.spotify.elasticsearch.plugins.indexwindow.AuditEvent.Result;
+
 /**
  * This is class is responsible for making sure that the window applies. As soon
  * as an object of this class is instantiated, the continuous check starts.
@@ -51,6 +54,8 @@ public class IndexWindowRunner implements Runnable {
 
     private final Client client;
 
+    private final AuditLog auditLog;
+
     private final ESLogger log;
 
     /**
@@ -59,11 +64,15 @@ public class IndexWindowRunner implements Runnable {
      *            with the cluster
      * @param window
      *            The window to be kept by this class
+     * @param auditLog
+     *            Where the actions taken for this window are recorded
      */
-    public IndexWindowRunner(Client client, IndexWindow window) {
+    public IndexWindowRunner(Client client, IndexWindow window,
+            AuditLog auditLog) {
         log = Loggers.getLogger(getClass());
         this.window = window;
         this.client = client;
+        this.auditLog = auditLog;
         executor = initializeExecutor();
         log.info("Starting to run index window for " + window);
     }
@@ -84,33 +93,56 @@ public class IndexWindowRunner implements Runnable {
     @Override
     public void run() {
         log.info("I am going to do some clean up for index window: " + window);
-        final IndicesStatusResponse indicesStatusResponse = client.admin()
-                .indices().prepareStatus().execute().actionGet();
-        final Set<String> allIndices = indicesStatusResponse.getIndices()
-                .keySet();
-        final Set<String> toBeRemoved = getToBeRemovedIndices(allIndices);
+        final long checkStart = System.currentTimeMillis();
+        final Set<String> toBeRemoved;
+        try {
+            final IndicesStatusResponse indicesStatusResponse = client.admin()
+                    .indices().prepareStatus().execute().actionGet();
+            final Set<String> allIndices = indicesStatusResponse.getIndices()
+                    .keySet();
+            toBeRemoved = getToBeRemovedIndices(allIndices);
+        } catch (final Exception e) {
+            log.error("Something went wrong while checking index window "
+                    + window, e);
+            audit(null, Action.SKIP, checkStart, Result.FAILURE, e.toString());
+            return;
+        }
         if (toBeRemoved.isEmpty()) {
             log.info("All good... no index to be removed.");
+            audit(null, Action.SKIP, checkStart, Result.SUCCESS, null);
             return;
         }
         for (final String index : toBeRemoved) {
             log.info("This index is going to be removed: " + index);
+            final long start = System.currentTimeMillis();
             try {
                 final DeleteIndexResponse deleteResponse = client.admin()
                         .indices().delete(new DeleteIndexRequest(index))
                         .actionGet();
                 if (deleteResponse.isAcknowledged()) {
                     log.info("Delete successful for: " + index);
+                    audit(index, Action.DELETE, start, Result.SUCCESS, null);
                 } else {
                     log.info("Delete not successful for: " + index);
+                    audit(index, Action.DELETE, start,
+                            Result.NOT_ACKNOWLEDGED, null);
                 }
             } catch (final Exception e) {
                 log.error("Something went wrong while deleting index " + index,
                         e);
+                audit(index, Action.DELETE, start, Result.FAILURE,
+                        e.toString());
             }
         }
     }
 
+    private void audit(String index, Action action, long start,
+            Result result, String message) {
+        auditLog.record(new AuditEvent(auditLog.getNodeName(), window
+                .getIndexPrefix(), index, action, start, System
+                .currentTimeMillis() - start, result, message));
+    }
+
     private Set<String> getToBeRemovedIndices(Set<String> allIndices) {
         final Set<String> toBeRemoved = new HashSet<String>();
         final TreeSet<TimestampedIndex> relevantIndices = getRelevantIndices(allIndices);
@@ -165,11 +197,21 @@ public class IndexWindowRunner implements Runnable {
      * should be disposed and the corresponding runner should be canceled.
      */
     public void close() {
+        final long start = System.currentTimeMillis();
         executor.shutdown();
         try {
-            executor.awaitTermination(10, TimeUnit.SECONDS);
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("IndexWindow executor did not terminate in time for "
+                        + window);
+                audit(null, Action.CLOSE, start, Result.FAILURE,
+                        "timed out waiting for runner to stop");
+                return;
+            }
         } catch (final InterruptedException e) {
             log.error("IndexWindow executor termination got interrupted.", e);
+            audit(null, Action.CLOSE, start, Result.FAILURE, e.toString());
+            return;
         }
+        audit(null, Action.CLOSE, start, Result.SUCCESS, null);
     }
 }
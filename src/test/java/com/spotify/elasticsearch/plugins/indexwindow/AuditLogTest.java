@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2012-2014 Spotify AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.spotify.elasticsearch.plugins.indexwindow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.After;
+import org.junit.Test;
+
+import com.spotify.elasticsearch.plugins.indexwindow.AuditEvent.Action;
+import com.spotify.elasticsearch.plugins.indexwindow.AuditEvent.Result;
+
+public class AuditLogTest {
+
+    private StubAuditLog auditLog;
+
+    @After
+    public void tearDown() {
+        auditLog.close();
+    }
+
+    @Test
+    public void dropsAndCountsEventsWhenBufferIsFull() {
+        auditLog = new StubAuditLog(settings(2, 10), true);
+        auditLog.record(event());
+        auditLog.record(event());
+        auditLog.record(event());
+        assertEquals(1, auditLog.getDropped());
+    }
+
+    @Test
+    public void flushesWhenBulkSizeIsReached() throws InterruptedException {
+        auditLog = new StubAuditLog(settings(10, 3), true);
+        auditLog.record(event());
+        auditLog.record(event());
+        auditLog.record(event());
+        assertTrue(auditLog.written.await(5, TimeUnit.SECONDS));
+        assertEquals(3, auditLog.lastBatchSize);
+    }
+
+    @Test
+    public void failedBulkRequestBacksOff() {
+        auditLog = new StubAuditLog(settings(10, 10), false);
+        auditLog.record(event());
+        final long before = System.currentTimeMillis();
+        auditLog.flush();
+        assertTrue(auditLog.getNextAttempt() > before);
+    }
+
+    private static Settings settings(int capacity, int bulkSize) {
+        return ImmutableSettings.settingsBuilder()
+                .put("index_window.audit.capacity", capacity)
+                .put("index_window.audit.bulk_size", bulkSize)
+                .put("index_window.audit.flush_interval", "1h").build();
+    }
+
+    private static AuditEvent event() {
+        return new AuditEvent("node-1", "my-index_", "my-index_2014.01.01",
+                Action.DELETE, System.currentTimeMillis(), 1, Result.SUCCESS,
+                null);
+    }
+
+    /**
+     * Stands in for the cluster: the template is always in place, and bulk
+     * requests either all succeed or all fail.
+     */
+    private static class StubAuditLog extends AuditLog {
+
+        private final boolean succeed;
+
+        private final CountDownLatch written = new CountDownLatch(1);
+
+        private volatile int lastBatchSize;
+
+        StubAuditLog(Settings settings, boolean succeed) {
+            super(settings, null);
+            this.succeed = succeed;
+        }
+
+        @Override
+        boolean putTemplate() {
+            return true;
+        }
+
+        @Override
+        boolean writeToElasticsearch(List<AuditEvent> events) {
+            lastBatchSize = events.size();
+            written.countDown();
+            return succeed;
+        }
+    }
+}